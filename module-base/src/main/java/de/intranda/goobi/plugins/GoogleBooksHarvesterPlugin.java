@@ -1,5 +1,9 @@
 package de.intranda.goobi.plugins;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 import org.goobi.production.enums.PluginType;
 import org.goobi.production.plugin.interfaces.IAdministrationPlugin;
 import org.goobi.production.plugin.interfaces.IPlugin;
@@ -23,6 +27,8 @@ public class GoogleBooksHarvesterPlugin implements IAdministrationPlugin, IPlugi
     private static final String PLUGIN_NAME = "intranda_administration_googlebooks_harvester";
     private static final String GUI = "/uii/administration_googlebooksHarvester.xhtml";
 
+    private List<ConvertedBook> queue;
+
     @Override
     public PluginType getType() {
         return PluginType.Administration;
@@ -38,6 +44,53 @@ public class GoogleBooksHarvesterPlugin implements IAdministrationPlugin, IPlugi
         return GUI;
     }
 
+    public HarvesterControl.State getState() {
+        return HarvesterControl.getState();
+    }
+
+    public void pause() {
+        try {
+            HarvesterControl.pause();
+        } catch (IOException e) {
+            log.error("Error while pausing the harvester", e);
+        }
+    }
+
+    public void resume() {
+        try {
+            HarvesterControl.resume();
+        } catch (IOException e) {
+            log.error("Error while resuming the harvester", e);
+        }
+    }
+
+    public void stop() {
+        try {
+            HarvesterControl.stop();
+        } catch (IOException e) {
+            log.error("Error while stopping the harvester", e);
+        }
+    }
+
+    /**
+     * Returns the download order chosen by the last harvester run.
+     */
+    public List<ConvertedBook> getQueue() {
+        if (queue == null) {
+            loadQueue();
+        }
+        return queue;
+    }
+
+    public void loadQueue() {
+        try {
+            queue = BookQueue.readQueue(BookQueue.getQueueFile());
+        } catch (IOException e) {
+            log.error("Error while reading the harvester queue", e);
+            queue = new ArrayList<>();
+        }
+    }
+
     public void updateStatusInformation() {
         try {
             // get all job groups
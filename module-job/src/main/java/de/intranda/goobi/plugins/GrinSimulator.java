@@ -0,0 +1,265 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.configuration.XMLConfiguration;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Local stand-in for Google GRIN, used to load test the harvester without network access.
+ *
+ * It answers the _available, _converted and _process resources in text format and serves generated encrypted books. Books requested with
+ * _process are generated in the background and show up in the _converted list once they are ready, just like conversions on GRIN. The
+ * download bandwidth can be limited to simulate a slow connection.
+ *
+ * The simulator keeps running between two harvester runs, so that books requested in one run can be downloaded in the next one. All its
+ * threads are daemon threads, so it never keeps the JVM alive.
+ */
+@Log4j
+public class GrinSimulator {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm");
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private static GrinSimulator instance;
+    private static String instanceSettings;
+
+    private final HttpServer server;
+    private final Path booksDir;
+    private final Path credentialsFile;
+    private final SyntheticBookGenerator generator;
+    private final long bandwidth;
+    private final ExecutorService converter = Executors.newSingleThreadExecutor(daemonThreads("gbooksharvester-simulator-converter"));
+    private final Deque<String> available = new ConcurrentLinkedDeque<>();
+    private final Map<String, String> converted = new LinkedHashMap<>();
+
+    /**
+     * Starts the simulator configured in the simulation section of the plugin configuration. A running simulator is reused as long as the
+     * configuration did not change, otherwise it is stopped and a new one is started.
+     */
+    public static synchronized GrinSimulator start(XMLConfiguration config) throws IOException {
+        int port = config.getInt("simulation.port", 8765);
+        String directory = config.getString("simulation.directory", "/opt/digiverso/goobi/tmp/gbooksharvester_simulation/");
+        int books = config.getInt("simulation.books", 50);
+        int convertedBooks = config.getInt("simulation.converted", 10);
+        int pages = config.getInt("simulation.pages", 200);
+        long pageSize = QuartzJob.parseSize(config.getString("simulation.pageSize", "2M"), "2M");
+        long bandwidth = QuartzJob.parseSize(config.getString("simulation.bandwidth", "0M"), "0M");
+        String passphrase = config.getString("passphrase");
+
+        String settings = String.join("|", String.valueOf(port), directory, String.valueOf(books), String.valueOf(convertedBooks),
+                String.valueOf(pages), String.valueOf(pageSize), String.valueOf(bandwidth), String.valueOf(passphrase));
+        if (instance != null && !settings.equals(instanceSettings)) {
+            log.info("Googlebooks harvester: simulation configuration changed, restarting GRIN simulator");
+            stopRunning();
+        }
+        if (instance == null) {
+            SyntheticBookGenerator generator = new SyntheticBookGenerator(pages, (int) Math.min(Integer.MAX_VALUE, pageSize), passphrase);
+            instance = new GrinSimulator(port, Paths.get(directory), books, convertedBooks, generator, bandwidth);
+            instanceSettings = settings;
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the simulator started by {@link #start(XMLConfiguration)}, if there is one.
+     */
+    public static synchronized void stopRunning() {
+        if (instance != null) {
+            instance.stop();
+            instance = null;
+            instanceSettings = null;
+            log.info("Googlebooks harvester: GRIN simulator stopped");
+        }
+    }
+
+    public GrinSimulator(int port, Path directory, int books, int convertedBooks, SyntheticBookGenerator generator, long bandwidth)
+            throws IOException {
+        this.booksDir = directory.resolve("books");
+        this.credentialsFile = directory.resolve("creds.json");
+        this.generator = generator;
+        this.bandwidth = bandwidth;
+
+        Files.createDirectories(booksDir);
+        // grin_oath.py only needs a token that is not expired, the simulator does not check it
+        String credentials = "{\"_module\": \"oauth2client.client\", \"_class\": \"OAuth2Credentials\", \"access_token\": \"simulation\", "
+                + "\"client_id\": \"simulation\", \"client_secret\": \"simulation\", \"refresh_token\": \"simulation\", \"token_expiry\": null, "
+                + "\"token_uri\": \"http://localhost/token\", \"user_agent\": null, \"invalid\": false}";
+        Files.write(credentialsFile, credentials.getBytes(StandardCharsets.UTF_8));
+
+        for (int i = 1; i <= books; i++) {
+            available.add(String.format("sim%08d", i));
+        }
+        List<String> toConvert = new ArrayList<>();
+        for (int i = 0; i < convertedBooks && !available.isEmpty(); i++) {
+            toConvert.add(available.poll());
+        }
+        convert(toConvert);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool(daemonThreads("gbooksharvester-simulator-http")));
+        // the dispatcher thread of the server inherits the daemon flag of the thread that starts it
+        Thread starter = new Thread(server::start);
+        starter.setDaemon(true);
+        starter.start();
+        try {
+            starter.join();
+        } catch (InterruptedException e) {
+            server.stop(0);
+            converter.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while starting the GRIN simulator", e);
+        }
+        log.info("Googlebooks harvester: GRIN simulator listening on " + getBaseUrl());
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/";
+    }
+
+    public Path getCredentialsFile() {
+        return credentialsFile;
+    }
+
+    public void stop() {
+        server.stop(0);
+        converter.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private void convert(List<String> barcodes) {
+        for (String barcode : barcodes) {
+            converter.submit(() -> {
+                try {
+                    Path book = generator.generate(barcode, booksDir);
+                    synchronized (converted) {
+                        converted.put(barcode, book.getFileName().toString() + "\t" + Files.size(book) + "\t"
+                                + LocalDateTime.now().format(DATE_FORMAT));
+                    }
+                } catch (IOException e) {
+                    log.error("Googlebooks harvester: could not generate simulated book " + barcode, e);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String resource = path.substring(path.lastIndexOf('/') + 1);
+        try {
+            if ("_available".equals(resource)) {
+                sendText(exchange, String.join("\n", available));
+            } else if ("_converted".equals(resource)) {
+                synchronized (converted) {
+                    sendText(exchange, String.join("\n", converted.values()));
+                }
+            } else if ("_process".equals(resource)) {
+                handleProcess(exchange);
+            } else if (resource.endsWith(".tar.gz.gpg") && Files.exists(booksDir.resolve(resource))) {
+                sendFile(exchange, booksDir.resolve(resource));
+            } else {
+                exchange.sendResponseHeaders(404, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleProcess(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getQuery();
+        StringBuilder response = new StringBuilder("Barcode\tStatus");
+        List<String> toConvert = new ArrayList<>();
+        if (query != null && query.startsWith("barcodes=")) {
+            for (String barcode : query.substring("barcodes=".length()).split(",")) {
+                if (available.remove(barcode)) {
+                    toConvert.add(barcode);
+                    response.append('\n').append(barcode).append("\tSuccess");
+                } else {
+                    response.append('\n').append(barcode).append("\tAlready being converted");
+                }
+            }
+        }
+        convert(toConvert);
+        sendText(exchange, response.toString());
+    }
+
+    private static void sendText(HttpExchange exchange, String text) throws IOException {
+        byte[] body = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private void sendFile(HttpExchange exchange, Path file) throws IOException {
+        exchange.sendResponseHeaders(200, Files.size(file));
+        long start = System.nanoTime();
+        long sent = 0;
+        byte[] buffer = new byte[CHUNK_SIZE];
+        try (InputStream in = Files.newInputStream(file); OutputStream out = exchange.getResponseBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                sent += read;
+                if (bandwidth > 0) {
+                    // sleep until the bytes sent so far match the configured bandwidth
+                    long ahead = sent * 1000 / bandwidth - (System.nanoTime() - start) / 1000000;
+                    if (ahead > 0) {
+                        Thread.sleep(ahead);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs the simulator standalone. Arguments: port, directory, number of books, pages per book, page size in bytes, passphrase.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 6) {
+            System.err.println("Usage: GrinSimulator <port> <directory> <books> <pages> <pageSize> <passphrase>");
+            System.exit(1);
+        }
+        SyntheticBookGenerator generator = new SyntheticBookGenerator(Integer.parseInt(args[3]), Integer.parseInt(args[4]), args[5]);
+        GrinSimulator simulator = new GrinSimulator(Integer.parseInt(args[0]), Paths.get(args[1]), Integer.parseInt(args[2]),
+                Integer.parseInt(args[2]), generator, 0);
+        System.out.println("GRIN simulator running on " + simulator.getBaseUrl() + " with credentials file " + simulator.getCredentialsFile());
+        // all threads of the simulator are daemon threads, keep the JVM running until it is killed
+        Thread.currentThread().join();
+    }
+}
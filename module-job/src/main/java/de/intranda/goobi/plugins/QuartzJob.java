@@ -3,12 +3,19 @@ package de.intranda.goobi.plugins;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.zip.GZIPInputStream;
 
@@ -70,11 +77,16 @@ public class QuartzJob extends AbstractGoobiJob {
     private static XPathExpression<Element> identifierXpath =
             xFactory.compile("//METS:xmlData/marc:record/marc:controlfield[@tag='001']", Filters.element(), null, metsNs, marcNs);
 
-    private static Path runningPath = Paths.get("/tmp/gbooksharvester_running");
-    private static Path stopPath = Paths.get("/tmp/gbooksharvester_stop");
+    private static final String STAGE_FILE = ".gbooksharvester_stage";
+    /** barcodes end up in process titles, file names and GRIN requests */
+    private static final Pattern BARCODE_PATTERN = Pattern.compile("[A-Za-z0-9_-]+");
     private final static long G = 1073741824;
     private final static long M = 1048576;
 
+    private GrinSimulator simulator;
+    private StubCatalogue stubCatalogue;
+    private HarvestStatistics statistics = new HarvestStatistics();
+
     @Override
     public String getJobName() {
         return "GooglebooksHarvester";
@@ -86,40 +98,77 @@ public class QuartzJob extends AbstractGoobiJob {
 
         int numberHarvested = 0;
         XMLConfiguration config = ConfigPlugins.getPluginConfig("intranda_administration_googlebooks-harvester");
+        statistics = new HarvestStatistics();
 
-        if (Files.exists(stopPath)) {
+        if (Files.exists(HarvesterControl.STOP_PATH)) {
             log.warn("Googlebooks harvester: File '/tmp/gbooksharvester_stop' exists. Will not run.");
             return;
         }
-        if (Files.exists(runningPath)) {
+        if (Files.exists(HarvesterControl.PAUSE_PATH)) {
+            log.warn("Googlebooks harvester: File '/tmp/gbooksharvester_pause' exists. Will not run.");
+            return;
+        }
+        if (Files.exists(HarvesterControl.RUNNING_PATH)) {
             log.warn("Googlebooks harvester: File '/tmp/gbooksharvester_running' exists. Will not run.");
             return;
         }
+        // set up after the guards, so that an overlapping trigger cannot restart or stop the simulator of a running harvest
+        if (config.getBoolean("simulation.enabled", false)) {
+            try {
+                simulator = GrinSimulator.start(config);
+            } catch (IOException e) {
+                log.error("Googlebooks harvester: could not start GRIN simulator", e);
+                return;
+            }
+            stubCatalogue = new StubCatalogue(config.getString("simulation.docType", "Monograph"));
+        } else {
+            // the simulation may have been switched off since the last run
+            GrinSimulator.stopRunning();
+            simulator = null;
+            stubCatalogue = null;
+        }
+
+        try {
+            cleanupStagingArea(config);
+        } catch (IOException e) {
+            log.error("Googlebooks harvester: could not prepare staging area", e);
+            return;
+        }
         if (!checkBufferFree(config)) {
-            log.warn("Googlebooks harvester: not enough free space in metadata dir. Aborting.");
+            log.warn("Googlebooks harvester: not enough free space. Aborting.");
             return;
         }
 
-        String[] convertedBooks;
+        List<ConvertedBook> queue;
         try {
-            convertedBooks = getConvertedBooks(config);
+            queue = getQueue(config, getConvertedBooks(config));
         } catch (IOException | InterruptedException e) {
             log.error("Googlebooks harvester: error getting converted books", e);
             return;
         }
         int maxNumberToConvert = config.getInt("numberToConvertHourly", 5);
+        HarvesterControl control = null;
         try {
-            Files.createFile(runningPath);
-            for (String convertedBook : convertedBooks) {
-                String id = convertedBook.replace("NLI_", "").replace(".tar.gz.gpg", "");
+            Files.createFile(HarvesterControl.RUNNING_PATH);
+            control = HarvesterControl.start();
+            for (ConvertedBook book : queue) {
+                // waits while paused and throws if stopped, before anything is created for the next book
+                control.checkpoint();
+                String convertedBook = book.getFileName();
+                String id = book.getBarcode();
                 String processTitle = "Google-" + id;
-                int count = ProcessManager.countProcessTitle(processTitle, null);
-                if (count != 0) {
-                    continue;
+                if (ProcessManager.countProcessTitle(processTitle, null) != 0) {
+                    if (!book.isResumable()) {
+                        // already harvested
+                        continue;
+                    }
+                } else if (book.isResumable()) {
+                    log.warn(String.format("Googlebooks harvester: process %s of an interrupted book is gone, starting it again", processTitle));
+                    book.setResumable(false);
                 }
                 try {
                     log.debug(String.format("Googlebooks harvester: Downloading %s", convertedBook));
-                    org.goobi.beans.Process goobiProcess = downloadAndImportBook(convertedBook, processTitle, id, config);
+                    org.goobi.beans.Process goobiProcess = downloadAndImportBook(book, processTitle, id, config, control);
                     if (goobiProcess == null) {
                         continue;
                     }
@@ -138,34 +187,49 @@ public class QuartzJob extends AbstractGoobiJob {
                     }
                     CloseStepHelper.closeStep(myStep, null);
                     numberHarvested++;
-                } catch (IOException | InterruptedException | DAOException | SwapException e) {
+                    statistics.addBook();
+                } catch (HarvestCancelledException e) {
+                    log.warn(String.format("Googlebooks harvester: stopped while processing %s. It will be resumed by the next run.", convertedBook));
+                    return;
+                } catch (IOException | DAOException | SwapException e) {
                     log.error("Googlebooks harvester: error downloading book:", e);
                 }
 
                 //check for free space after each book
                 if (!checkBufferFree(config)) {
-                    log.warn("Googlebooks harvester: not enough free space in metadata dir. Aborting.");
-                    return;
-                }
-                if (Files.exists(stopPath)) {
-                    log.warn("Googlebooks harvester: File '/tmp/gbooksharvester_stop' exists. Will not run.");
+                    log.warn("Googlebooks harvester: not enough free space. Aborting.");
                     return;
                 }
                 if (numberHarvested >= maxNumberToConvert) {
                     break;
                 }
             }
+        } catch (HarvestCancelledException e) {
+            log.warn("Googlebooks harvester: stopped.");
+            return;
         } catch (IOException e) {
             // TODO Auto-generated catch block
             log.error(e);
+        } catch (InterruptedException e) {
+            log.warn("Googlebooks harvester: interrupted.");
+            Thread.currentThread().interrupt();
+            return;
         } finally {
-            if (Files.exists(runningPath)) {
+            if (control != null) {
+                try {
+                    control.close();
+                } catch (IOException e) {
+                    log.error("trying to close control channel:", e);
+                }
+            }
+            if (Files.exists(HarvesterControl.RUNNING_PATH)) {
                 try {
-                    Files.delete(runningPath);
+                    Files.delete(HarvesterControl.RUNNING_PATH);
                 } catch (IOException e) {
                     log.error("trying to delete running file:", e);
                 }
             }
+            writeStatistics(config);
         }
 
         try {
@@ -182,8 +246,7 @@ public class QuartzJob extends AbstractGoobiJob {
     private void convertBooks(XMLConfiguration config) throws IOException, InterruptedException {
         int maxNumberToConvert = config.getInt("numberToConvertHourly", 5);
         String scriptDir = config.getString("scriptDir", "/opt/digiverso/goobi/scripts/googlebooks/");
-        ProcessBuilder pb =
-                new ProcessBuilder("/usr/bin/env", "python", "grin_oath.py", "--directory", "NLI", "--resource", "_available?format=text");
+        ProcessBuilder pb = new ProcessBuilder(getGrinCommand(config, "_available?format=text"));
         pb.directory(new File(scriptDir));
         Process p = pb.start();
         ProcessOutputReader stdoutReader = new ProcessOutputReader(p.getInputStream());
@@ -216,11 +279,10 @@ public class QuartzJob extends AbstractGoobiJob {
         int numberToConvert = Math.min(maxNumberToConvert, books.length);
         String barcodes = Arrays.stream(books).limit(numberToConvert).collect(Collectors.joining(","));
 
-        String[] command =
-                new String[] { "/usr/bin/env", "python", "grin_oath.py", "--directory", "NLI", "--resource", "_process?barcodes=" + barcodes };
+        List<String> command = getGrinCommand(config, "_process?barcodes=" + barcodes);
 
-        log.debug("Googlebooks harvester: calling the shell to convert books:" + Arrays.asList(command));
-        pb = new ProcessBuilder("/usr/bin/env", "python", "grin_oath.py", "--directory", "NLI", "--resource", "_process?barcodes=" + barcodes);
+        log.debug("Googlebooks harvester: calling the shell to convert books:" + command);
+        pb = new ProcessBuilder(command);
         pb.directory(new File(scriptDir));
         p = pb.start();
 
@@ -243,10 +305,90 @@ public class QuartzJob extends AbstractGoobiJob {
         }
     }
 
+    /**
+     * Puts all converted books into the configured order and writes that order for the administration page. Books with a stage file were
+     * interrupted by an earlier run. Whether a book was already harvested is checked when it is its turn, so that only the books that are
+     * actually processed in this run cause a database query.
+     */
+    public List<ConvertedBook> getQueue(XMLConfiguration config, String[] convertedBooks) throws IOException {
+        List<ConvertedBook> books = new ArrayList<>();
+        for (int i = 0; i < convertedBooks.length; i++) {
+            if (StringUtils.isBlank(convertedBooks[i])) {
+                continue;
+            }
+            ConvertedBook book = ConvertedBook.parse(convertedBooks[i], i);
+            if (!BARCODE_PATTERN.matcher(book.getBarcode()).matches()) {
+                log.warn("Googlebooks harvester: ignoring converted book with unexpected name " + book.getFileName());
+                continue;
+            }
+            book.setResumable(Files.exists(getStageFile("Google-" + book.getBarcode(), config)));
+            books.add(book);
+        }
+
+        List<BookQueue.Policy> policies = new ArrayList<>();
+        for (String policy : config.getStringArray("queue.policy")) {
+            try {
+                policies.add(BookQueue.Policy.fromString(policy));
+            } catch (IllegalArgumentException e) {
+                log.error("Googlebooks harvester: unknown queue policy " + policy);
+            }
+        }
+        if (policies.isEmpty()) {
+            policies.add(BookQueue.Policy.PRIORITY);
+        }
+        List<String> priorityBarcodes = Arrays.stream(config.getStringArray("queue.priorityBarcode"))
+                .map(String::trim)
+                .collect(Collectors.toList());
+        int maxWaitHours = config.getInt("queue.maxWaitHours", 72);
+        BookQueue bookQueue = new BookQueue(policies, priorityBarcodes, maxWaitHours > 0 ? Duration.ofHours(maxWaitHours) : null);
+
+        Instant now = Instant.now();
+        BookQueue.updateFirstSeen(books, BookQueue.getFirstSeenFile(), now);
+        List<ConvertedBook> queue = bookQueue.order(books, now);
+        BookQueue.writeQueue(BookQueue.getQueueFile(), queue);
+        log.debug("Googlebooks harvester: number of books in queue: " + queue.size());
+        return queue;
+    }
+
+    /**
+     * Builds the command line to fetch a resource from GRIN. The base URL and credentials can be overwritten, which is used by the simulation
+     * mode.
+     */
+    private List<String> getGrinCommand(XMLConfiguration config, String resource, String... arguments) {
+        List<String> command = new ArrayList<>(Arrays.asList("/usr/bin/env", "python", "grin_oath.py", "--directory", "NLI"));
+        String baseUrl = simulator != null ? simulator.getBaseUrl() : config.getString("grinBaseUrl");
+        if (StringUtils.isNotBlank(baseUrl)) {
+            command.add("--base_url");
+            command.add(baseUrl);
+        }
+        String credentialsFile = simulator != null ? simulator.getCredentialsFile().toString() : config.getString("grinCredentialsFile");
+        if (StringUtils.isNotBlank(credentialsFile)) {
+            command.add("--credentials-file");
+            command.add(credentialsFile);
+        }
+        command.add("--resource");
+        command.add(resource);
+        command.addAll(Arrays.asList(arguments));
+        return command;
+    }
+
+    private void writeStatistics(XMLConfiguration config) {
+        String report = statistics.getReport();
+        log.info("Googlebooks harvester statistics:\n" + report);
+        String reportFile = config.getString("simulation.reportFile");
+        if (simulator != null && StringUtils.isNotBlank(reportFile)) {
+            try {
+                Files.write(Paths.get(reportFile), (Instant.now() + "\n" + report + "\n").getBytes(StandardCharsets.UTF_8),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.error("Googlebooks harvester: could not write statistics", e);
+            }
+        }
+    }
+
     public String[] getConvertedBooks(XMLConfiguration config) throws IOException, InterruptedException {
         String scriptDir = config.getString("scriptDir", "/opt/digiverso/goobi/scripts/googlebooks/");
-        ProcessBuilder pb =
-                new ProcessBuilder("/usr/bin/env", "python", "grin_oath.py", "--directory", "NLI", "--resource", "_converted?format=text");
+        ProcessBuilder pb = new ProcessBuilder(getGrinCommand(config, "_converted?format=text"));
         pb.directory(new File(scriptDir));
         Process p = pb.start();
         ProcessOutputReader stdoutReader = new ProcessOutputReader(p.getInputStream());
@@ -273,17 +415,154 @@ public class QuartzJob extends AbstractGoobiJob {
 
     }
 
-    private org.goobi.beans.Process downloadAndImportBook(String convertedBook, String processTitle, String id, XMLConfiguration config)
-            throws IOException, InterruptedException, DAOException, SwapException {
-        org.goobi.beans.Process goobiProcess = createProcess(processTitle, config);
+    private org.goobi.beans.Process downloadAndImportBook(ConvertedBook book, String processTitle, String id, XMLConfiguration config,
+            HarvesterControl control) throws IOException, InterruptedException, DAOException, SwapException {
+        String convertedBook = book.getFileName();
+        org.goobi.beans.Process goobiProcess =
+                book.isResumable() ? ProcessManager.getProcessByTitle(processTitle) : createProcess(processTitle, config);
         String scriptDir = config.getString("scriptDir", "/opt/digiverso/goobi/scripts/googlebooks/");
         Path goobiImagesSourceDir = Paths.get(goobiProcess.getSourceDirectory());
+        Path masterFolder = Paths.get(goobiProcess.getImagesOrigDirectory(false));
+        Path hOCRFolder = Paths.get(goobiProcess.getOcrXmlDirectory().replace("_xml", "_hocr"));
+        Path ocrTxtFolder = Paths.get(goobiProcess.getOcrTxtDirectory());
+
+        // when a staging area is configured, the whole pipeline runs there and the results are handed over at the end
+        Path stagingDir = getStagingDir(config);
+        Path workDir = stagingDir == null ? null : stagingDir.resolve(processTitle);
+        Path stageFile = getStageFile(processTitle, config);
+        boolean cancelled = false;
+        try {
+            if (book.isResumable()) {
+                log.info(String.format("Googlebooks harvester: resuming %s after stage %s", convertedBook, BookStage.read(stageFile)));
+            } else {
+                // a stage left over from a process that no longer exists must not be applied to the new process
+                BookStage.STARTED.write(stageFile);
+            }
+            downloadAndExtractBook(convertedBook, goobiProcess, scriptDir, config, control, stageFile,
+                    workDir == null ? goobiImagesSourceDir : workDir.resolve("source"),
+                    workDir == null ? masterFolder : workDir.resolve("master"),
+                    workDir == null ? hOCRFolder : workDir.resolve("hocr"),
+                    workDir == null ? ocrTxtFolder : workDir.resolve("txt"));
+
+            if (workDir != null) {
+                // move the results into the process folders in one bulk step, renaming where possible
+                long handoverStart = System.nanoTime();
+                BulkFileTransfer transfer = new BulkFileTransfer(config.getInt("transferThreads", 4),
+                        (int) Math.min(Integer.MAX_VALUE, parseSize(config.getString("transferBufferSize", "8M"), "8M")), control);
+                transfer.moveDirectoryContents(workDir.resolve("master"), masterFolder);
+                transfer.moveDirectoryContents(workDir.resolve("hocr"), hOCRFolder);
+                transfer.moveDirectoryContents(workDir.resolve("txt"), ocrTxtFolder);
+                transfer.moveDirectoryContents(workDir.resolve("source"), goobiImagesSourceDir);
+                statistics.addStage("handover", handoverStart);
+            }
+            long importStart = System.nanoTime();
+            org.goobi.beans.Process importedProcess = importMetadata(goobiProcess, findGoogleMetsFile(goobiImagesSourceDir));
+            statistics.addStage("import", importStart);
+            return importedProcess;
+        } catch (HarvestCancelledException | InterruptedException e) {
+            // keep the completed stages, the next run continues from there
+            cancelled = true;
+            throw e;
+        } catch (IOException | DAOException | SwapException e) {
+            // the staged data is discarded below, flag the process so that it is not left behind unnoticed
+            if (ProcessManager.countProcessTitle(processTitle, null) != 0) {
+                try {
+                    setFirstStepToError(goobiProcess, "Could not download and import the book: " + e.getMessage());
+                } catch (DAOException e1) {
+                    log.error("Googlebooks harvester: could not mark process " + processTitle + " as failed", e1);
+                }
+            }
+            throw e;
+        } finally {
+            if (!cancelled) {
+                if (workDir != null && Files.exists(workDir)) {
+                    StorageProvider.getInstance().deleteDir(workDir);
+                }
+                Files.deleteIfExists(stageFile);
+            }
+        }
+    }
+
+    private void downloadAndExtractBook(String convertedBook, org.goobi.beans.Process goobiProcess, String scriptDir, XMLConfiguration config,
+            HarvesterControl control, Path stageFile, Path goobiImagesSourceDir, Path masterFolder, Path hOCRFolder, Path ocrTxtFolder)
+            throws IOException, InterruptedException, DAOException {
+        BookStage stage = BookStage.read(stageFile);
         if (!Files.exists(goobiImagesSourceDir)) {
             Files.createDirectories(goobiImagesSourceDir);
         }
         Path downloadPath = goobiImagesSourceDir.resolve(convertedBook);
-        ProcessBuilder pb = new ProcessBuilder("/usr/bin/env", "python", "grin_oath.py", "--directory", "NLI", "--resource", convertedBook, "-o",
-                downloadPath.toAbsolutePath().toString());
+        String outputName = convertedBook.replace(".gpg", "");
+        Path decryptPath = goobiImagesSourceDir.resolve(outputName);
+
+        if (stage.compareTo(BookStage.DOWNLOADED) < 0) {
+            long start = System.nanoTime();
+            downloadBook(convertedBook, goobiProcess, scriptDir, config, control, downloadPath);
+            statistics.addStage("download", start);
+            statistics.addBytes(Files.size(downloadPath));
+            BookStage.DOWNLOADED.write(stageFile);
+        }
+        if (stage.compareTo(BookStage.DECRYPTED) < 0) {
+            control.checkpoint();
+            long start = System.nanoTime();
+            decryptBook(config, control, downloadPath, decryptPath);
+            statistics.addStage("decrypt", start);
+            BookStage.DECRYPTED.write(stageFile);
+        }
+
+        //extract stuff...
+        if (!Files.exists(masterFolder)) {
+            Files.createDirectories(masterFolder);
+        }
+        if (!Files.exists(hOCRFolder)) {
+            Files.createDirectories(hOCRFolder);
+        }
+        if (!Files.exists(ocrTxtFolder)) {
+            Files.createDirectories(ocrTxtFolder);
+        }
+        if (stage.compareTo(BookStage.EXTRACTED) < 0) {
+            control.checkpoint();
+            long start = System.nanoTime();
+            try (GZIPInputStream gzIn = new GZIPInputStream(Files.newInputStream(decryptPath));
+                    TarArchiveInputStream tarIn = new TarArchiveInputStream(gzIn)) {
+                TarArchiveEntry currEntry = null;
+                while ((currEntry = tarIn.getNextTarEntry()) != null) {
+                    control.checkpoint();
+                    String name = currEntry.getName();
+                    if (name.endsWith("jp2")) {
+                        //copy to master folder
+                        Files.copy(tarIn, masterFolder.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                    } else if (name.endsWith("html")) {
+                        //copy to OCR-hOCR folder
+                        Files.copy(tarIn, hOCRFolder.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                    } else if (name.endsWith("txt")) {
+                        //copy to OCR txt folder
+                        Files.copy(tarIn, ocrTxtFolder.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                    } else if (name.endsWith("xml")) {
+                        Files.copy(tarIn, goobiImagesSourceDir.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+                    }
+                }
+            }
+            statistics.addStage("extract", start);
+            BookStage.EXTRACTED.write(stageFile);
+        }
+    }
+
+    private static Path findGoogleMetsFile(Path goobiImagesSourceDir) throws IOException {
+        Path googleMetsFile = null;
+        if (Files.exists(goobiImagesSourceDir)) {
+            try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(goobiImagesSourceDir, "*.xml")) {
+                for (Path file : dirStream) {
+                    googleMetsFile = file;
+                }
+            }
+        }
+        return googleMetsFile;
+    }
+
+    private void downloadBook(String convertedBook, org.goobi.beans.Process goobiProcess, String scriptDir, XMLConfiguration config,
+            HarvesterControl control, Path downloadPath) throws IOException, InterruptedException, DAOException {
+        Files.deleteIfExists(downloadPath);
+        ProcessBuilder pb = new ProcessBuilder(getGrinCommand(config, convertedBook, "-o", downloadPath.toAbsolutePath().toString()));
         pb.directory(new File(scriptDir));
         Process p = pb.start();
         ProcessOutputReader stdoutReader = new ProcessOutputReader(p.getInputStream());
@@ -294,7 +573,7 @@ public class QuartzJob extends AbstractGoobiJob {
         Thread stderrThread = new Thread(stderrReader);
         stderrThread.start();
 
-        int result = p.waitFor();
+        int result = control.waitFor(p);
         stdoutThread.join(1000);
         stderrThread.join(1000);
 
@@ -303,83 +582,59 @@ public class QuartzJob extends AbstractGoobiJob {
             ProcessManager.deleteProcess(goobiProcess);
             throw new IOException(String.format("GRIN script exited with code %d. Stderr was: %s", result, stderrReader.getOutput()));
         }
+    }
 
+    private void decryptBook(XMLConfiguration config, HarvesterControl control, Path downloadPath, Path decryptPath)
+            throws IOException, InterruptedException {
         //decrypt stuff...
-        String outputName = convertedBook.replace(".gpg", "");
-        Path decryptPath = goobiImagesSourceDir.resolve(outputName);
+        Files.deleteIfExists(decryptPath);
         Process gpgProcess =
                 new ProcessBuilder("/usr/bin/gpg", "--pinentry-mode=loopback", "--passphrase", config.getString("passphrase"), "--output",
                         decryptPath.toAbsolutePath().toString(), "-d", downloadPath.toAbsolutePath().toString()).start();
 
-        stderrReader = new ProcessOutputReader(gpgProcess.getErrorStream());
-        stderrThread = new Thread(stderrReader);
+        ProcessOutputReader stderrReader = new ProcessOutputReader(gpgProcess.getErrorStream());
+        Thread stderrThread = new Thread(stderrReader);
         stderrThread.start();
 
-        stdoutReader = new ProcessOutputReader(gpgProcess.getInputStream());
-        stdoutThread = new Thread(stdoutReader);
+        ProcessOutputReader stdoutReader = new ProcessOutputReader(gpgProcess.getInputStream());
+        Thread stdoutThread = new Thread(stdoutReader);
         stdoutThread.start();
 
-        gpgProcess.waitFor();
-        if (gpgProcess.exitValue() != 0) {
+        if (control.waitFor(gpgProcess) != 0) {
             log.error("Googlebooks: gpg stdout: " + stdoutReader.getOutput());
             log.error("Googlebooks: gpg stderr: " + stderrReader.getOutput());
             throw new IOException("could not decrypt gpg file: " + downloadPath.toAbsolutePath().toString());
         }
 
         Files.delete(downloadPath);
+    }
 
-        //extract stuff...
-        Path masterFolder = Paths.get(goobiProcess.getImagesOrigDirectory(false));
-        if (!Files.exists(masterFolder)) {
-            Files.createDirectories(masterFolder);
-        }
-        Path hOCRFolder = Paths.get(goobiProcess.getOcrXmlDirectory().replace("_xml", "_hocr"));
-        if (!Files.exists(hOCRFolder)) {
-            Files.createDirectories(hOCRFolder);
-        }
-        Path ocrTxtFolder = Paths.get(goobiProcess.getOcrTxtDirectory());
-        if (!Files.exists(ocrTxtFolder)) {
-            Files.createDirectories(ocrTxtFolder);
-        }
-        Path googleMetsFile = null;
-        try (GZIPInputStream gzIn = new GZIPInputStream(Files.newInputStream(decryptPath));
-                TarArchiveInputStream tarIn = new TarArchiveInputStream(gzIn)) {
-            TarArchiveEntry currEntry = null;
-            while ((currEntry = tarIn.getNextTarEntry()) != null) {
-                String name = currEntry.getName();
-                if (name.endsWith("jp2")) {
-                    //copy to master folder
-                    Files.copy(tarIn, masterFolder.resolve(name));
-                } else if (name.endsWith("html")) {
-                    //copy to OCR-hOCR folder
-                    Files.copy(tarIn, hOCRFolder.resolve(name));
-                } else if (name.endsWith("txt")) {
-                    //copy to OCR txt folder
-                    Files.copy(tarIn, ocrTxtFolder.resolve(name));
-                } else if (name.endsWith("xml")) {
-                    googleMetsFile = goobiImagesSourceDir.resolve(name);
-                    Files.copy(tarIn, googleMetsFile);
-                }
-            }
+    /**
+     * The stage file of a book lives in its staging folder or, without staging area, in the temporary folder.
+     */
+    private static Path getStageFile(String processTitle, XMLConfiguration config) {
+        Path stagingDir = getStagingDir(config);
+        if (stagingDir != null) {
+            return stagingDir.resolve(processTitle).resolve(STAGE_FILE);
         }
+        return Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), "gbooksharvester_stages", processTitle);
+    }
 
+    private org.goobi.beans.Process importMetadata(org.goobi.beans.Process goobiProcess, Path googleMetsFile)
+            throws IOException, InterruptedException, DAOException, SwapException {
         List<CatalogueIdentifier> idsFromMarc = new ArrayList<>();
         try {
-            idsFromMarc = readIdsFromMarc(googleMetsFile);
+            if (googleMetsFile != null) {
+                idsFromMarc = readIdsFromMarc(googleMetsFile);
+            }
         } catch (JDOMException e) {
             log.error(e);
-            writeLogEntry(goobiProcess, "Could not read identifier from google METS file. See log for details");
-            Step firstStep = goobiProcess.getSchritte().get(0);
-            firstStep.setBearbeitungsstatusEnum(StepStatus.ERROR);
-            StepManager.saveStep(firstStep);
+            setFirstStepToError(goobiProcess, "Could not read identifier from google METS file. See log for details");
             return null;
         }
 
         if (idsFromMarc.isEmpty()) {
-            writeLogEntry(goobiProcess, "Could not read identifier from google METS file.");
-            Step firstStep = goobiProcess.getSchritte().get(0);
-            firstStep.setBearbeitungsstatusEnum(StepStatus.ERROR);
-            StepManager.saveStep(firstStep);
+            setFirstStepToError(goobiProcess, "Could not read identifier from google METS file.");
             return null;
         }
 
@@ -393,10 +648,7 @@ public class QuartzJob extends AbstractGoobiJob {
             goobiProcess.writeMetadataFile(ff);
         } catch (PreferencesException | WriteException | TypeNotAllowedForParentException | ImportPluginException e) {
             log.error(e);
-            writeLogEntry(goobiProcess, "Could not import metadata from catalogue.");
-            Step firstStep = goobiProcess.getSchritte().get(0);
-            firstStep.setBearbeitungsstatusEnum(StepStatus.ERROR);
-            StepManager.saveStep(firstStep);
+            setFirstStepToError(goobiProcess, "Could not import metadata from catalogue.");
             return null;
         }
 
@@ -438,6 +690,13 @@ public class QuartzJob extends AbstractGoobiJob {
         Helper.addMessageToProcessJournal(goobiProcess.getId(), LogType.ERROR, message, "");
     }
 
+    private static void setFirstStepToError(org.goobi.beans.Process goobiProcess, String message) throws DAOException {
+        writeLogEntry(goobiProcess, message);
+        Step firstStep = goobiProcess.getSchritte().get(0);
+        firstStep.setBearbeitungsstatusEnum(StepStatus.ERROR);
+        StepManager.saveStep(firstStep);
+    }
+
     private org.goobi.beans.Process createProcess(String processTitle, XMLConfiguration config) throws DAOException {
         org.goobi.beans.Process template = ProcessManager.getProcessByTitle(config.getString("templateTitle"));
         org.goobi.beans.Process processCopy = new org.goobi.beans.Process();
@@ -478,55 +737,120 @@ public class QuartzJob extends AbstractGoobiJob {
     }
 
     public boolean checkBufferFree(XMLConfiguration config) {
+        Path metadataDir = Paths.get(ConfigurationHelper.getInstance().getMetadataFolder());
+        if (!checkBufferFree(metadataDir, parseSize(config.getString("buffer"), "150G"))) {
+            log.warn("Googlebooks harvester: not enough free space in metadata dir.");
+            return false;
+        }
+        Path stagingDir = getStagingDir(config);
+        if (stagingDir != null && !checkBufferFree(stagingDir, parseSize(config.getString("stagingBuffer", "20G"), "20G"))) {
+            log.warn("Googlebooks harvester: not enough free space in staging dir.");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean checkBufferFree(Path dir, long buffer) {
         boolean bufferFree = false;
-        String bufStr = config.getString("buffer");
-        if (bufStr == null) {
-            log.error("buffer not set. Using 150G");
-            bufStr = "150G";
+        try {
+            long free = Files.getFileStore(dir.toRealPath()).getUsableSpace();
+            if (buffer < free) {
+                bufferFree = true;
+            }
+        } catch (IOException e) {
+            log.error(e);
+        }
+        return bufferFree;
+    }
+
+    static long parseSize(String sizeStr, String defaultValue) {
+        if (StringUtils.isBlank(sizeStr)) {
+            log.error("size not set. Using " + defaultValue);
+            sizeStr = defaultValue;
         }
-        char unit = bufStr.charAt(bufStr.length() - 1);
-        Long buffer;
+        sizeStr = sizeStr.trim();
+        char unit = sizeStr.charAt(sizeStr.length() - 1);
+        long size;
         try {
-            buffer = Long.parseLong(bufStr.substring(0, bufStr.length() - 1));
+            size = Long.parseLong(sizeStr.substring(0, sizeStr.length() - 1));
             if (unit == 'G') {
-                buffer = buffer * G;
+                size = size * G;
             } else if (unit == 'M') {
-                buffer = buffer * M;
+                size = size * M;
             } else {
                 log.error("could not read unit. Using G");
-                buffer = buffer * G;
+                size = size * G;
             }
         } catch (NumberFormatException e) {
-            log.error("could not parse buffer. Using 150G");
-            buffer = 150l * G;
+            log.error("could not parse size " + sizeStr + ". Using " + defaultValue);
+            size = parseSize(defaultValue, defaultValue);
         }
+        return size;
+    }
 
-        Path metadataDir = Paths.get(ConfigurationHelper.getInstance().getMetadataFolder());
-        try {
-            long free = Files.getFileStore(metadataDir.toRealPath()).getUsableSpace();
-            if (buffer < free) {
-                bufferFree = true;
+    /**
+     * Returns the configured staging directory on fast local disk or null, if the pipeline should run directly in the process folders.
+     */
+    private static Path getStagingDir(XMLConfiguration config) {
+        String stagingDir = config.getString("stagingDir");
+        if (StringUtils.isBlank(stagingDir)) {
+            return null;
+        }
+        return Paths.get(stagingDir);
+    }
+
+    /**
+     * Creates the staging directory if needed and removes the book folders left behind by an interrupted run that cannot be resumed. Only the
+     * Google-* folders created by the harvester are touched, everything else in the staging directory is left alone.
+     */
+    private void cleanupStagingArea(XMLConfiguration config) throws IOException {
+        Path stagingDir = getStagingDir(config);
+        if (stagingDir == null) {
+            return;
+        }
+        if (!Files.exists(stagingDir)) {
+            Files.createDirectories(stagingDir);
+            return;
+        }
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(stagingDir)) {
+            for (Path leftover : dirStream) {
+                if (!Files.isDirectory(leftover) || !leftover.getFileName().toString().startsWith("Google-")) {
+                    log.warn("Googlebooks harvester: staging area contains foreign entry, leaving it alone: " + leftover);
+                    continue;
+                }
+                // books interrupted by the operator are kept and resumed
+                if (Files.exists(leftover.resolve(STAGE_FILE))
+                        && ProcessManager.countProcessTitle(leftover.getFileName().toString(), null) != 0) {
+                    continue;
+                }
+                log.warn("Googlebooks harvester: removing leftover from staging area: " + leftover);
+                StorageProvider.getInstance().deleteDir(leftover);
             }
-        } catch (IOException e) {
-            log.error(e);
         }
-        return bufferFree;
     }
 
     private Fileformat getRecordFromCatalogue(Prefs prefs, List<CatalogueIdentifier> ids, String opacName) throws ImportPluginException {
-        ConfigOpacCatalogue coc = ConfigOpac.getInstance().getCatalogueByName(opacName);
-        if (coc == null) {
-            throw new ImportPluginException("Catalogue with name " + opacName + " not found. Please check goobi_opac.xml");
-        }
-        IOpacPlugin myImportOpac = (IOpacPlugin) PluginLoader.getPluginByTitle(PluginType.Opac, coc.getOpacType());
-        if (myImportOpac == null) {
-            throw new ImportPluginException("Opac plugin " + coc.getOpacType() + " not found. Abort.");
+        ConfigOpacCatalogue coc = null;
+        IOpacPlugin myImportOpac = null;
+        if (stubCatalogue == null) {
+            coc = ConfigOpac.getInstance().getCatalogueByName(opacName);
+            if (coc == null) {
+                throw new ImportPluginException("Catalogue with name " + opacName + " not found. Please check goobi_opac.xml");
+            }
+            myImportOpac = (IOpacPlugin) PluginLoader.getPluginByTitle(PluginType.Opac, coc.getOpacType());
+            if (myImportOpac == null) {
+                throw new ImportPluginException("Opac plugin " + coc.getOpacType() + " not found. Abort.");
+            }
         }
         Fileformat myRdf = null;
         CatalogueIdentifier usedId = null;
         for (CatalogueIdentifier id : ids) {
             try {
-                myRdf = myImportOpac.search(id.getField(), id.getSearchValue(), coc, prefs);
+                if (stubCatalogue != null) {
+                    myRdf = stubCatalogue.search(id.getField(), id.getSearchValue(), prefs);
+                } else {
+                    myRdf = myImportOpac.search(id.getField(), id.getSearchValue(), coc, prefs);
+                }
                 if (myRdf != null) {
                     usedId = id;
                     break;
@@ -0,0 +1,40 @@
+package de.intranda.goobi.plugins;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Fileformat;
+import ugh.dl.Metadata;
+import ugh.dl.Prefs;
+import ugh.exceptions.UGHException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Stand-in for the catalogue used in simulation mode. It answers every search with a minimal record, so that the harvester can be load tested
+ * without access to the real catalogue. It is deliberately not registered as an opac plugin and can therefore never be selected in
+ * production.
+ */
+public class StubCatalogue {
+
+    private final String docType;
+
+    public StubCatalogue(String docType) {
+        this.docType = docType;
+    }
+
+    public Fileformat search(String field, String searchValue, Prefs prefs) throws UGHException {
+        Fileformat ff = new MetsMods(prefs);
+        DigitalDocument digDoc = new DigitalDocument();
+        DocStruct logical = digDoc.createDocStruct(prefs.getDocStrctTypeByName(docType));
+        digDoc.setLogicalDocStruct(logical);
+
+        Metadata title = new Metadata(prefs.getMetadataTypeByName("TitleDocMain"));
+        title.setValue("Simulated book " + searchValue);
+        logical.addMetadata(title);
+        Metadata identifier = new Metadata(prefs.getMetadataTypeByName("CatalogIDDigital"));
+        identifier.setValue(searchValue);
+        logical.addMetadata(identifier);
+
+        ff.setDigitalDocument(digDoc);
+        return ff;
+    }
+}
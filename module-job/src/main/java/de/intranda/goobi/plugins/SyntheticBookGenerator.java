@@ -0,0 +1,93 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+
+/**
+ * Creates encrypted books in the format delivered by GRIN: a gpg encrypted tar.gz containing one jp2, hOCR and txt file per page and a METS
+ * file with the MARC record. The images are random data of the configured size, so they do not compress, just like real jp2 files.
+ */
+public class SyntheticBookGenerator {
+
+    private static final String METS_TEMPLATE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<METS:mets xmlns:METS=\"http://www.loc.gov/METS/\" xmlns:marc=\"http://www.loc.gov/MARC21/slim\">\n"
+            + "  <METS:dmdSec ID=\"DMD1\">\n"
+            + "    <METS:mdWrap MDTYPE=\"MARC\">\n"
+            + "      <METS:xmlData>\n"
+            + "        <marc:record>\n"
+            + "          <marc:controlfield tag=\"001\">%s</marc:controlfield>\n"
+            + "        </marc:record>\n"
+            + "      </METS:xmlData>\n"
+            + "    </METS:mdWrap>\n"
+            + "  </METS:dmdSec>\n"
+            + "</METS:mets>\n";
+
+    private final int pages;
+    private final int pageSize;
+    private final String passphrase;
+    private final Random random = new Random();
+
+    public SyntheticBookGenerator(int pages, int pageSize, String passphrase) {
+        this.pages = pages;
+        this.pageSize = pageSize;
+        this.passphrase = passphrase;
+    }
+
+    /**
+     * Generates the book and returns the path of the encrypted file, named like the files served by GRIN.
+     */
+    public Path generate(String barcode, Path targetDir) throws IOException, InterruptedException {
+        Files.createDirectories(targetDir);
+        Path tarFile = targetDir.resolve("NLI_" + barcode + ".tar.gz");
+        Path gpgFile = targetDir.resolve("NLI_" + barcode + ".tar.gz.gpg");
+
+        byte[] image = new byte[pageSize];
+        try (TarArchiveOutputStream tarOut =
+                new TarArchiveOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tarFile), 1024 * 1024)))) {
+            for (int page = 1; page <= pages; page++) {
+                String name = String.format("%08d", page);
+                random.nextBytes(image);
+                addEntry(tarOut, name + ".jp2", image);
+                String text = "Simulated page " + page + " of book " + barcode;
+                String hocr = "<html><body><p class=\"ocr_line\">" + text + "</p></body></html>";
+                addEntry(tarOut, name + ".html", hocr.getBytes(StandardCharsets.UTF_8));
+                addEntry(tarOut, name + ".txt", text.getBytes(StandardCharsets.UTF_8));
+            }
+            addEntry(tarOut, barcode + ".xml", String.format(METS_TEMPLATE, barcode).getBytes(StandardCharsets.UTF_8));
+        }
+
+        Process gpgProcess = new ProcessBuilder("/usr/bin/gpg", "--batch", "--yes", "--pinentry-mode=loopback", "--passphrase", passphrase,
+                "--symmetric", "--output", gpgFile.toAbsolutePath().toString(), tarFile.toAbsolutePath().toString()).start();
+        ProcessOutputReader stderrReader = new ProcessOutputReader(gpgProcess.getErrorStream());
+        Thread stderrThread = new Thread(stderrReader);
+        stderrThread.start();
+        ProcessOutputReader stdoutReader = new ProcessOutputReader(gpgProcess.getInputStream());
+        Thread stdoutThread = new Thread(stdoutReader);
+        stdoutThread.start();
+
+        int result = gpgProcess.waitFor();
+        stdoutThread.join(1000);
+        stderrThread.join(1000);
+        Files.delete(tarFile);
+        if (result != 0) {
+            throw new IOException(String.format("gpg exited with code %d. Stderr was: %s", result, stderrReader.getOutput()));
+        }
+        return gpgFile;
+    }
+
+    private static void addEntry(TarArchiveOutputStream tarOut, String name, byte[] content) throws IOException {
+        TarArchiveEntry entry = new TarArchiveEntry(name);
+        entry.setSize(content.length);
+        tarOut.putArchiveEntry(entry);
+        tarOut.write(content);
+        tarOut.closeArchiveEntry();
+    }
+}
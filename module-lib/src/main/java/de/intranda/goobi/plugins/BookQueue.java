@@ -0,0 +1,221 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.apache.commons.lang3.StringUtils;
+
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Orders the converted books before they are downloaded.
+ *
+ * Books that were interrupted by an earlier run come first, so that their staged data is handed over as soon as possible. Books from the
+ * priority list follow, in the order of the list. Books that have been waiting longer than the maximum waiting time
+ * follow, oldest first, so that no book is starved by the other policies. All remaining books are ordered by the configured policies and
+ * finally by their position in the GRIN list.
+ */
+@Log4j
+public class BookQueue {
+
+    public enum Policy {
+        PRIORITY,
+        OLDEST,
+        SMALLEST;
+
+        public static Policy fromString(String value) {
+            return Policy.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private static final String QUEUE_FILE = "gbooksharvester_queue.txt";
+    private static final String FIRST_SEEN_FILE = "gbooksharvester_firstseen.txt";
+
+    private final List<Policy> policies;
+    private final List<String> priorityBarcodes;
+    private final Duration maxWait;
+
+    public BookQueue(List<Policy> policies, List<String> priorityBarcodes, Duration maxWait) {
+        this.policies = policies;
+        this.priorityBarcodes = priorityBarcodes;
+        this.maxWait = maxWait;
+    }
+
+    public static Path getQueueFile() {
+        return Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), QUEUE_FILE);
+    }
+
+    public static Path getFirstSeenFile() {
+        return Paths.get(ConfigurationHelper.getInstance().getTemporaryFolder(), FIRST_SEEN_FILE);
+    }
+
+    public List<ConvertedBook> order(List<ConvertedBook> books, Instant now) {
+        Map<String, ConvertedBook> remaining = new LinkedHashMap<>();
+        for (ConvertedBook book : books) {
+            remaining.put(book.getBarcode(), book);
+        }
+        List<ConvertedBook> ordered = new ArrayList<>();
+
+        for (ConvertedBook book : books) {
+            // GRIN may list a barcode twice, it was already taken then
+            if (book.isResumable() && remaining.remove(book.getBarcode()) != null) {
+                book.setReason("resume");
+                ordered.add(book);
+            }
+        }
+        if (policies.contains(Policy.PRIORITY)) {
+            for (String barcode : priorityBarcodes) {
+                ConvertedBook book = remaining.remove(barcode);
+                if (book != null) {
+                    book.setReason("priority list");
+                    ordered.add(book);
+                }
+            }
+        }
+
+        String policyReason = policies.stream()
+                .filter(policy -> policy != Policy.PRIORITY)
+                .map(policy -> policy.name().toLowerCase())
+                .collect(Collectors.joining(", "));
+        if (policyReason.isEmpty()) {
+            policyReason = "GRIN order";
+        }
+        List<ConvertedBook> starving = new ArrayList<>();
+        List<ConvertedBook> rest = new ArrayList<>();
+        for (ConvertedBook book : remaining.values()) {
+            Instant since = book.getAvailableSince();
+            if (maxWait != null && since != null && since.plus(maxWait).isBefore(now)) {
+                book.setReason("waiting since " + since);
+                starving.add(book);
+            } else {
+                book.setReason(policyReason);
+                rest.add(book);
+            }
+        }
+        starving.sort(Comparator.comparing(ConvertedBook::getAvailableSince).thenComparing(ConvertedBook::getGrinPosition));
+        ordered.addAll(starving);
+
+        Comparator<ConvertedBook> comparator = null;
+        for (Policy policy : policies) {
+            Comparator<ConvertedBook> next = null;
+            if (policy == Policy.OLDEST) {
+                next = Comparator.comparing(ConvertedBook::getAvailableSince, Comparator.nullsLast(Comparator.naturalOrder()));
+            } else if (policy == Policy.SMALLEST) {
+                next = Comparator.comparingLong(book -> book.getSize() < 0 ? Long.MAX_VALUE : book.getSize());
+            }
+            if (next != null) {
+                comparator = comparator == null ? next : comparator.thenComparing(next);
+            }
+        }
+        Comparator<ConvertedBook> grinOrder = Comparator.comparingInt(ConvertedBook::getGrinPosition);
+        rest.sort(comparator == null ? grinOrder : comparator.thenComparing(grinOrder));
+        ordered.addAll(rest);
+        return ordered;
+    }
+
+    /**
+     * Sets the first seen date of all books from the state file and writes the updated state back. Books that are no longer in the list are
+     * dropped from the state file, lines that cannot be read are skipped.
+     */
+    public static void updateFirstSeen(List<ConvertedBook> books, Path stateFile, Instant now) throws IOException {
+        Map<String, Instant> firstSeen = new HashMap<>();
+        List<String> stateLines = new ArrayList<>();
+        if (Files.exists(stateFile)) {
+            try {
+                stateLines = Files.readAllLines(stateFile, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                log.warn("Googlebooks harvester: could not read " + stateFile + ", all books are treated as new", e);
+            }
+        }
+        for (String line : stateLines) {
+            String[] columns = line.split("\t");
+            if (columns.length != 2) {
+                log.warn("Googlebooks harvester: skipping malformed line in " + stateFile + ": " + line);
+                continue;
+            }
+            try {
+                firstSeen.put(columns[0], Instant.parse(columns[1]));
+            } catch (DateTimeParseException e) {
+                log.warn("Googlebooks harvester: skipping malformed line in " + stateFile + ": " + line);
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        for (ConvertedBook book : books) {
+            book.setFirstSeen(firstSeen.getOrDefault(book.getBarcode(), now));
+            lines.add(book.getBarcode() + "\t" + book.getFirstSeen());
+        }
+        writeAtomically(stateFile, lines);
+    }
+
+    /**
+     * Writes the chosen order, so that it can be shown on the administration page.
+     */
+    public static void writeQueue(Path queueFile, List<ConvertedBook> books) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (ConvertedBook book : books) {
+            lines.add(String.join("\t", book.getFileName(), String.valueOf(book.getSize()),
+                    book.getConvertedDate() == null ? "" : book.getConvertedDate().toString(),
+                    book.getFirstSeen() == null ? "" : book.getFirstSeen().toString(), String.valueOf(book.getGrinPosition()),
+                    StringUtils.defaultString(book.getReason())));
+        }
+        writeAtomically(queueFile, lines);
+    }
+
+    /**
+     * Reads the order written by {@link #writeQueue(Path, List)}. Lines that cannot be read are skipped.
+     */
+    public static List<ConvertedBook> readQueue(Path queueFile) throws IOException {
+        List<ConvertedBook> books = new ArrayList<>();
+        if (!Files.exists(queueFile)) {
+            return books;
+        }
+        for (String line : Files.readAllLines(queueFile, StandardCharsets.UTF_8)) {
+            String[] columns = line.split("\t", -1);
+            if (columns.length < 6) {
+                log.warn("Googlebooks harvester: skipping malformed line in " + queueFile + ": " + line);
+                continue;
+            }
+            try {
+                ConvertedBook book = new ConvertedBook(columns[0], Integer.parseInt(columns[4]));
+                book.setSize(Long.parseLong(columns[1]));
+                book.setConvertedDate(columns[2].isEmpty() ? null : Instant.parse(columns[2]));
+                book.setFirstSeen(columns[3].isEmpty() ? null : Instant.parse(columns[3]));
+                book.setReason(columns[5]);
+                books.add(book);
+            } catch (NumberFormatException | DateTimeParseException e) {
+                log.warn("Googlebooks harvester: skipping malformed line in " + queueFile + ": " + line);
+            }
+        }
+        return books;
+    }
+
+    private static void writeAtomically(Path file, List<String> lines) throws IOException {
+        if (file.getParent() != null && !Files.exists(file.getParent())) {
+            Files.createDirectories(file.getParent());
+        }
+        Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
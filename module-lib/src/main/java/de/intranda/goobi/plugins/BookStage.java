@@ -0,0 +1,47 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Completed stages of a book, kept on disk so that an interrupted book can be resumed.
+ */
+@Log4j
+public enum BookStage {
+    STARTED,
+    DOWNLOADED,
+    DECRYPTED,
+    EXTRACTED;
+
+    /**
+     * Reads the stage from the stage file. A missing or unreadable file means that the book has to start from the beginning.
+     */
+    public static BookStage read(Path stageFile) {
+        if (!Files.exists(stageFile)) {
+            return STARTED;
+        }
+        try {
+            return valueOf(new String(Files.readAllBytes(stageFile), StandardCharsets.UTF_8).trim());
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Googlebooks harvester: could not read stage file " + stageFile + ", starting the book from the beginning");
+            return STARTED;
+        }
+    }
+
+    /**
+     * Writes the stage via a temporary file and a rename, so that the stage file is never left empty.
+     */
+    public void write(Path stageFile) throws IOException {
+        if (!Files.exists(stageFile.getParent())) {
+            Files.createDirectories(stageFile.getParent());
+        }
+        Path tmpFile = stageFile.resolveSibling(stageFile.getFileName() + ".tmp");
+        Files.write(tmpFile, name().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmpFile, stageFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
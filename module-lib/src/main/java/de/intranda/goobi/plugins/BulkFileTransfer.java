@@ -0,0 +1,155 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Moves the content of a staging folder into its final location. A rename is used whenever source and target are on the same file system,
+ * otherwise the files are copied in parallel with a large buffer. Every file becomes visible in the target folder with a single rename, so
+ * readers never see partially written files.
+ */
+public class BulkFileTransfer {
+
+    private static final String PART_SUFFIX = ".part";
+
+    private final int threads;
+    private final int bufferSize;
+    private final HarvesterControl control;
+
+    public BulkFileTransfer(int threads, int bufferSize) {
+        this(threads, bufferSize, null);
+    }
+
+    /**
+     * @param control if set, the transfer waits while the harvester is paused and is cancelled between two files or buffers when it is
+     *            stopped. Files that were already moved stay in the target folder, so a cancelled transfer can simply be repeated.
+     */
+    public BulkFileTransfer(int threads, int bufferSize, HarvesterControl control) {
+        this.threads = Math.max(1, threads);
+        this.bufferSize = Math.max(64 * 1024, bufferSize);
+        this.control = control;
+    }
+
+    /**
+     * Moves all files from sourceDir to targetDir and deletes sourceDir afterwards.
+     *
+     * @return the number of bytes that had to be copied (0 if everything could be renamed)
+     */
+    public long moveDirectoryContents(Path sourceDir, Path targetDir) throws IOException, InterruptedException {
+        if (!Files.exists(sourceDir)) {
+            return 0;
+        }
+        if (!Files.exists(targetDir)) {
+            Files.createDirectories(targetDir.getParent());
+            try {
+                Files.move(sourceDir, targetDir, StandardCopyOption.ATOMIC_MOVE);
+                return 0;
+            } catch (AtomicMoveNotSupportedException e) {
+                // different file systems, fall through to file by file transfer
+            }
+            Files.createDirectories(targetDir);
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(sourceDir)) {
+            for (Path file : dirStream) {
+                files.add(file);
+            }
+        }
+
+        List<Path> toCopy = new ArrayList<>();
+        for (Path file : files) {
+            checkpoint();
+            if (!toCopy.isEmpty()) {
+                toCopy.add(file);
+                continue;
+            }
+            try {
+                Files.move(file, targetDir.resolve(file.getFileName()), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                toCopy.add(file);
+            }
+        }
+
+        long bytes = copyParallel(toCopy, targetDir);
+        Files.delete(sourceDir);
+        return bytes;
+    }
+
+    long copyParallel(List<Path> files, Path targetDir) throws IOException, InterruptedException {
+        if (files.isEmpty()) {
+            return 0;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, files.size()));
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> copyAndDelete(file, targetDir)));
+            }
+            long bytes = 0;
+            for (Future<Long> future : futures) {
+                try {
+                    bytes += future.get();
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof InterruptedException) {
+                        throw (InterruptedException) e.getCause();
+                    }
+                    if (e.getCause() instanceof IOException) {
+                        throw (IOException) e.getCause();
+                    }
+                    throw new IOException(e.getCause());
+                }
+            }
+            return bytes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long copyAndDelete(Path file, Path targetDir) throws IOException, InterruptedException {
+        Path target = targetDir.resolve(file.getFileName());
+        Path partFile = targetDir.resolve("." + file.getFileName() + PART_SUFFIX);
+        long size;
+        boolean moved = false;
+        try {
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+                    FileChannel out = FileChannel.open(partFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                            StandardOpenOption.TRUNCATE_EXISTING)) {
+                size = in.size();
+                long position = 0;
+                while (position < size) {
+                    checkpoint();
+                    position += in.transferTo(position, Math.min(bufferSize, size - position), out);
+                }
+            }
+            checkpoint();
+            Files.move(partFile, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            // never leave partial files in the target folder
+            if (!moved) {
+                Files.deleteIfExists(partFile);
+            }
+        }
+        Files.delete(file);
+        return size;
+    }
+
+    private void checkpoint() throws HarvestCancelledException, InterruptedException {
+        if (control != null) {
+            control.checkpoint();
+        }
+    }
+}
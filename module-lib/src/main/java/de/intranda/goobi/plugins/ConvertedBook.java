@@ -0,0 +1,81 @@
+package de.intranda.goobi.plugins;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+
+import lombok.Data;
+
+/**
+ * A book that was converted by GRIN and is waiting to be downloaded.
+ */
+@Data
+public class ConvertedBook {
+
+    private static final List<DateTimeFormatter> DATE_FORMATS = Arrays.asList(DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm"),
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"), DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+
+    private String fileName;
+    private String barcode;
+    /** size in bytes, -1 if GRIN did not report it */
+    private long size = -1;
+    /** conversion date reported by GRIN, null if GRIN did not report it */
+    private Instant convertedDate;
+    /** first time the harvester saw the book in the list of converted books */
+    private Instant firstSeen;
+    /** position in the list returned by GRIN */
+    private int grinPosition;
+    /** true if an earlier run was interrupted while processing this book */
+    private boolean resumable;
+    /** why the book was put at its place in the queue */
+    private String reason;
+
+    public ConvertedBook(String fileName, int grinPosition) {
+        this.fileName = fileName;
+        this.barcode = fileName.replace("NLI_", "").replace(".tar.gz.gpg", "");
+        this.grinPosition = grinPosition;
+    }
+
+    /**
+     * The date the book became available for download. Falls back to the first time the harvester saw it.
+     */
+    public Instant getAvailableSince() {
+        return convertedDate != null ? convertedDate : firstSeen;
+    }
+
+    /**
+     * Parses one line of the GRIN _converted list. The first tab separated column is the file name, further columns are used as size in bytes
+     * if they are numeric and as conversion date if they can be parsed as a date.
+     */
+    public static ConvertedBook parse(String line, int grinPosition) {
+        String[] columns = line.trim().split("\t");
+        ConvertedBook book = new ConvertedBook(columns[0].trim(), grinPosition);
+        for (int i = 1; i < columns.length; i++) {
+            String column = columns[i].trim();
+            if (column.matches("\\d+")) {
+                book.setSize(Long.parseLong(column));
+            } else {
+                Instant date = parseDate(column);
+                if (date != null) {
+                    book.setConvertedDate(date);
+                }
+            }
+        }
+        return book;
+    }
+
+    private static Instant parseDate(String value) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDateTime.parse(value, format).atZone(ZoneId.systemDefault()).toInstant();
+            } catch (DateTimeParseException e) {
+                // try next format
+            }
+        }
+        return null;
+    }
+}
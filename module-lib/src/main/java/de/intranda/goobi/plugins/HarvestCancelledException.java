@@ -0,0 +1,15 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the operator stopped the harvester while a book was being processed.
+ */
+public class HarvestCancelledException extends IOException {
+
+    private static final long serialVersionUID = 4316250186738312473L;
+
+    public HarvestCancelledException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,49 @@
+package de.intranda.goobi.plugins;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and per stage latency of one harvester run.
+ */
+public class HarvestStatistics {
+
+    private final long startTime = System.nanoTime();
+    private final Map<String, long[]> stages = new LinkedHashMap<>();
+    private long bytes;
+    private int books;
+
+    /**
+     * Records the duration of one stage of one book.
+     */
+    public synchronized void addStage(String stage, long startNanos) {
+        long duration = System.nanoTime() - startNanos;
+        // count, sum, max
+        long[] values = stages.computeIfAbsent(stage, key -> new long[3]);
+        values[0]++;
+        values[1] += duration;
+        values[2] = Math.max(values[2], duration);
+    }
+
+    public synchronized void addBytes(long downloaded) {
+        bytes += downloaded;
+    }
+
+    public synchronized void addBook() {
+        books++;
+    }
+
+    public synchronized String getReport() {
+        double seconds = Math.max(1, System.nanoTime() - startTime) / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("books: %d, duration: %.1f s, books/hour: %.2f, bytes: %d, bytes/s: %.0f%n", books, seconds,
+                books * 3600 / seconds, bytes, bytes / seconds));
+        for (Map.Entry<String, long[]> entry : stages.entrySet()) {
+            long[] values = entry.getValue();
+            sb.append(String.format("stage %s: count %d, avg %d ms, max %d ms%n", entry.getKey(), values[0],
+                    TimeUnit.NANOSECONDS.toMillis(values[1] / values[0]), TimeUnit.NANOSECONDS.toMillis(values[2])));
+        }
+        return sb.toString();
+    }
+}
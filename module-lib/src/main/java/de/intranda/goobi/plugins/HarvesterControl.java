@@ -0,0 +1,201 @@
+package de.intranda.goobi.plugins;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Control channel between the administration page and the running harvester job.
+ *
+ * The state is kept in control files, so that operators can also pause or stop the harvester from the shell. The running job watches these
+ * files and reacts immediately: while paused, running subprocesses are suspended and all copy loops wait. On stop, running subprocesses are
+ * killed and the current book is cancelled, leaving its completed stages on disk so that it can be resumed by the next run.
+ */
+@Log4j
+public class HarvesterControl implements Closeable {
+
+    public enum State {
+        IDLE,
+        RUNNING,
+        PAUSED,
+        STOPPED
+    }
+
+    public static final Path CONTROL_DIR = Paths.get("/tmp");
+    public static final Path RUNNING_PATH = CONTROL_DIR.resolve("gbooksharvester_running");
+    public static final Path STOP_PATH = CONTROL_DIR.resolve("gbooksharvester_stop");
+    public static final Path PAUSE_PATH = CONTROL_DIR.resolve("gbooksharvester_pause");
+
+    private final Path stopPath;
+    private final Path pausePath;
+    private final WatchService watchService;
+    private final Thread watcherThread;
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean paused;
+    private volatile boolean stopped;
+
+    public static State getState() {
+        if (Files.exists(STOP_PATH)) {
+            return State.STOPPED;
+        }
+        if (Files.exists(PAUSE_PATH)) {
+            return State.PAUSED;
+        }
+        if (Files.exists(RUNNING_PATH)) {
+            return State.RUNNING;
+        }
+        return State.IDLE;
+    }
+
+    public static void pause() throws IOException {
+        if (!Files.exists(PAUSE_PATH)) {
+            Files.createFile(PAUSE_PATH);
+        }
+    }
+
+    public static void resume() throws IOException {
+        Files.deleteIfExists(STOP_PATH);
+        Files.deleteIfExists(PAUSE_PATH);
+    }
+
+    public static void stop() throws IOException {
+        if (!Files.exists(STOP_PATH)) {
+            Files.createFile(STOP_PATH);
+        }
+        Files.deleteIfExists(PAUSE_PATH);
+    }
+
+    /**
+     * Starts watching the control files. The returned instance must be closed when the job is done.
+     */
+    public static HarvesterControl start() throws IOException {
+        return new HarvesterControl(CONTROL_DIR);
+    }
+
+    HarvesterControl(Path controlDir) throws IOException {
+        stopPath = controlDir.resolve(STOP_PATH.getFileName());
+        pausePath = controlDir.resolve(PAUSE_PATH.getFileName());
+        watchService = FileSystems.getDefault().newWatchService();
+        controlDir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+        refresh();
+        watcherThread = new Thread(this::watch, "gbooksharvester-control");
+        watcherThread.setDaemon(true);
+        watcherThread.start();
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // the timeout doubles as a fallback in case events get lost
+                WatchKey key = watchService.poll(1, TimeUnit.SECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+                refresh();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private synchronized void refresh() {
+        boolean wasPaused = paused;
+        stopped = Files.exists(stopPath);
+        paused = !stopped && Files.exists(pausePath);
+        if (paused != wasPaused) {
+            log.info("Googlebooks harvester: " + (paused ? "paused" : "resumed"));
+            for (Process process : processes) {
+                signal(process, paused ? "STOP" : "CONT");
+            }
+        }
+        notifyAll();
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Blocks while the harvester is paused and throws if it was stopped.
+     */
+    public void checkpoint() throws HarvestCancelledException, InterruptedException {
+        synchronized (this) {
+            while (paused && !stopped) {
+                wait(1000);
+            }
+        }
+        if (stopped) {
+            throw new HarvestCancelledException("Googlebooks harvester was stopped");
+        }
+    }
+
+    /**
+     * Waits for a subprocess to finish. The subprocess is suspended while the harvester is paused and killed if it is stopped.
+     *
+     * @return the exit value of the subprocess
+     */
+    public int waitFor(Process process) throws HarvestCancelledException, InterruptedException {
+        processes.add(process);
+        try {
+            synchronized (this) {
+                if (paused) {
+                    signal(process, "STOP");
+                }
+            }
+            while (!process.waitFor(1, TimeUnit.SECONDS)) {
+                if (stopped) {
+                    kill(process);
+                    throw new HarvestCancelledException("Googlebooks harvester was stopped, killed subprocess " + process.pid());
+                }
+            }
+            return process.exitValue();
+        } finally {
+            processes.remove(process);
+        }
+    }
+
+    private void kill(Process process) throws InterruptedException {
+        signal(process, "CONT");
+        process.destroy();
+        if (!process.waitFor(10, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+    }
+
+    private static void signal(Process process, String signal) {
+        if (!process.isAlive()) {
+            return;
+        }
+        try {
+            new ProcessBuilder("/bin/kill", "-" + signal, String.valueOf(process.pid())).start().waitFor();
+        } catch (IOException e) {
+            log.error("Googlebooks harvester: could not send SIG" + signal + " to subprocess " + process.pid(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcherThread.interrupt();
+        watchService.close();
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BookQueueTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-10T12:00:00Z");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static ConvertedBook book(String barcode, int position, long size, int hoursWaiting) {
+        ConvertedBook book = new ConvertedBook("NLI_" + barcode + ".tar.gz.gpg", position);
+        book.setSize(size);
+        book.setFirstSeen(NOW.minus(Duration.ofHours(hoursWaiting)));
+        return book;
+    }
+
+    @Test
+    public void testPriorityAndStarvation() {
+        List<ConvertedBook> books = Arrays.asList(book("1", 0, 300, 1), book("2", 1, 100, 2), book("3", 2, 200, 100), book("4", 3, 50, 3));
+        BookQueue queue = new BookQueue(Arrays.asList(BookQueue.Policy.PRIORITY, BookQueue.Policy.SMALLEST), Collections.singletonList("2"),
+                Duration.ofHours(72));
+        List<ConvertedBook> ordered = queue.order(books, NOW);
+        assertEquals("2", ordered.get(0).getBarcode());
+        assertEquals("3", ordered.get(1).getBarcode());
+        assertEquals("4", ordered.get(2).getBarcode());
+        assertEquals("1", ordered.get(3).getBarcode());
+    }
+
+    @Test
+    public void testGrinOrderWithoutPolicies() {
+        List<ConvertedBook> books = Arrays.asList(book("1", 0, 300, 1), book("2", 1, 100, 2), book("3", 2, 200, 3));
+        BookQueue queue = new BookQueue(Collections.singletonList(BookQueue.Policy.PRIORITY), Collections.emptyList(), null);
+        List<ConvertedBook> ordered = queue.order(books, NOW);
+        assertEquals("1", ordered.get(0).getBarcode());
+        assertEquals("2", ordered.get(1).getBarcode());
+        assertEquals("3", ordered.get(2).getBarcode());
+    }
+
+    @Test
+    public void testOldestFirst() {
+        List<ConvertedBook> books = Arrays.asList(book("1", 0, 300, 1), book("2", 1, 100, 5), book("3", 2, 200, 3));
+        BookQueue queue = new BookQueue(Collections.singletonList(BookQueue.Policy.OLDEST), Collections.emptyList(), Duration.ofHours(72));
+        List<ConvertedBook> ordered = queue.order(books, NOW);
+        assertEquals("2", ordered.get(0).getBarcode());
+        assertEquals("3", ordered.get(1).getBarcode());
+        assertEquals("1", ordered.get(2).getBarcode());
+    }
+
+    @Test
+    public void testResumableFirstAndListedTwice() {
+        ConvertedBook resumable = book("2", 1, 100, 1);
+        resumable.setResumable(true);
+        ConvertedBook duplicate = book("2", 3, 100, 1);
+        duplicate.setResumable(true);
+        List<ConvertedBook> books = Arrays.asList(book("1", 0, 300, 1), resumable, book("3", 2, 200, 1), duplicate);
+        BookQueue queue = new BookQueue(Collections.singletonList(BookQueue.Policy.PRIORITY), Collections.singletonList("3"), null);
+        List<ConvertedBook> ordered = queue.order(books, NOW);
+        assertEquals(3, ordered.size());
+        assertEquals("2", ordered.get(0).getBarcode());
+        assertEquals("resume", ordered.get(0).getReason());
+        assertEquals("3", ordered.get(1).getBarcode());
+        assertEquals("1", ordered.get(2).getBarcode());
+    }
+
+    @Test
+    public void testMalformedStateFiles() throws IOException {
+        Path stateFile = folder.getRoot().toPath().resolve("firstseen.txt");
+        Files.write(stateFile, Arrays.asList("1\t2024-01-01T00:00:00Z", "2\tnot a date", "garbage"), StandardCharsets.UTF_8);
+        List<ConvertedBook> books = Arrays.asList(book("1", 0, 300, 1), book("2", 1, 100, 1));
+        BookQueue.updateFirstSeen(books, stateFile, NOW);
+        assertEquals(Instant.parse("2024-01-01T00:00:00Z"), books.get(0).getFirstSeen());
+        assertEquals(NOW, books.get(1).getFirstSeen());
+
+        Path queueFile = folder.getRoot().toPath().resolve("queue.txt");
+        BookQueue.writeQueue(queueFile, books);
+        Files.write(queueFile, Arrays.asList("NLI_3.tar.gz.gpg\tx\t\t\t2\treason", "short"), StandardCharsets.UTF_8,
+                StandardOpenOption.APPEND);
+        List<ConvertedBook> read = BookQueue.readQueue(queueFile);
+        assertEquals(2, read.size());
+        assertEquals("2", read.get(1).getBarcode());
+    }
+}
@@ -0,0 +1,40 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BookStageTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        Path stageFile = folder.getRoot().toPath().resolve("Google-1").resolve(".gbooksharvester_stage");
+        assertEquals(BookStage.STARTED, BookStage.read(stageFile));
+
+        BookStage.DECRYPTED.write(stageFile);
+        assertEquals(BookStage.DECRYPTED, BookStage.read(stageFile));
+        BookStage.EXTRACTED.write(stageFile);
+        assertEquals(BookStage.EXTRACTED, BookStage.read(stageFile));
+        assertFalse(Files.exists(stageFile.resolveSibling(stageFile.getFileName() + ".tmp")));
+    }
+
+    @Test
+    public void testUnreadableStageStartsFromTheBeginning() throws IOException {
+        Path stageFile = folder.getRoot().toPath().resolve(".gbooksharvester_stage");
+        Files.write(stageFile, new byte[0]);
+        assertEquals(BookStage.STARTED, BookStage.read(stageFile));
+        Files.write(stageFile, "garbage".getBytes(StandardCharsets.UTF_8));
+        assertEquals(BookStage.STARTED, BookStage.read(stageFile));
+    }
+}
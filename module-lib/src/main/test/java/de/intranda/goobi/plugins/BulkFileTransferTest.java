@@ -0,0 +1,90 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class BulkFileTransferTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testRenameWholeFolder() throws IOException, InterruptedException {
+        Path source = folder.newFolder("source").toPath();
+        Files.write(source.resolve("00000001.jp2"), "page".getBytes(StandardCharsets.UTF_8));
+        Path target = folder.getRoot().toPath().resolve("images").resolve("master");
+
+        long copied = new BulkFileTransfer(2, 1024).moveDirectoryContents(source, target);
+
+        assertEquals(0, copied);
+        assertFalse(Files.exists(source));
+        assertEquals("page", new String(Files.readAllBytes(target.resolve("00000001.jp2")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testReplaceExistingFiles() throws IOException, InterruptedException {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Files.write(source.resolve("00000001.txt"), "new".getBytes(StandardCharsets.UTF_8));
+        Files.write(target.resolve("00000001.txt"), "old".getBytes(StandardCharsets.UTF_8));
+        Files.write(target.resolve("00000002.txt"), "other".getBytes(StandardCharsets.UTF_8));
+
+        new BulkFileTransfer(2, 1024).moveDirectoryContents(source, target);
+
+        assertFalse(Files.exists(source));
+        assertEquals("new", new String(Files.readAllBytes(target.resolve("00000001.txt")), StandardCharsets.UTF_8));
+        assertEquals("other", new String(Files.readAllBytes(target.resolve("00000002.txt")), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testCopyFallback() throws IOException, InterruptedException {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        byte[] content = new byte[300 * 1024];
+        new Random(1).nextBytes(content);
+        Path first = Files.write(source.resolve("00000001.jp2"), content);
+        Path second = Files.write(source.resolve("00000002.jp2"), content);
+        Files.write(target.resolve("00000002.jp2"), "old".getBytes(StandardCharsets.UTF_8));
+
+        long copied = new BulkFileTransfer(2, 64 * 1024).copyParallel(Arrays.asList(first, second), target);
+
+        assertEquals(2L * content.length, copied);
+        assertFalse(Files.exists(first));
+        assertFalse(Files.exists(second));
+        assertArrayEquals(content, Files.readAllBytes(target.resolve("00000001.jp2")));
+        assertArrayEquals(content, Files.readAllBytes(target.resolve("00000002.jp2")));
+        try (Stream<Path> files = Files.list(target)) {
+            assertTrue(files.noneMatch(file -> file.getFileName().toString().endsWith(".part")));
+        }
+    }
+
+    @Test
+    public void testFailedCopyLeavesNoPartFile() throws IOException, InterruptedException {
+        Path source = folder.newFolder("source").toPath();
+        Path target = folder.newFolder("target").toPath();
+        Path missing = source.resolve("00000001.jp2");
+
+        try {
+            new BulkFileTransfer(1, 1024).copyParallel(Arrays.asList(missing), target);
+        } catch (IOException e) {
+            // expected, the source file does not exist
+        }
+        try (Stream<Path> files = Files.list(target)) {
+            assertEquals(0, files.count());
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class HarvesterControlTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPauseBlocksUntilResumed() throws Exception {
+        Path controlDir = folder.getRoot().toPath();
+        Path pauseFile = Files.createFile(controlDir.resolve(HarvesterControl.PAUSE_PATH.getFileName()));
+        try (HarvesterControl control = new HarvesterControl(controlDir)) {
+            Thread worker = new Thread(() -> {
+                try {
+                    control.checkpoint();
+                } catch (IOException | InterruptedException e) {
+                    // not expected
+                }
+            });
+            worker.start();
+            worker.join(500);
+            assertTrue(worker.isAlive());
+
+            Files.delete(pauseFile);
+            worker.join(5000);
+            assertFalse(worker.isAlive());
+        }
+    }
+
+    @Test
+    public void testStopKillsSubprocess() throws Exception {
+        Path controlDir = folder.getRoot().toPath();
+        try (HarvesterControl control = new HarvesterControl(controlDir)) {
+            Process process = new ProcessBuilder("sleep", "60").start();
+            Files.createFile(controlDir.resolve(HarvesterControl.STOP_PATH.getFileName()));
+            long start = System.nanoTime();
+            try {
+                control.waitFor(process);
+                fail("expected the harvester to be stopped");
+            } catch (HarvestCancelledException e) {
+                // expected
+            }
+            assertFalse(process.isAlive());
+            assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 15);
+            assertTrue(control.isStopped());
+        }
+    }
+}